@@ -0,0 +1,260 @@
+package org.os;
+import java.io.*;
+import java.nio.file.*;
+import java.util.*;
+import java.util.concurrent.*;
+import java.util.stream.Stream;
+
+
+/**
+ * I/O microbenchmarks for the mount holding the current directory.
+ * Every measured operation goes through the same methods the shell commands use
+ * (cat redirection and display, touch, rm, mkdir, rmdir and ls), with their console
+ * output discarded while timing, so the numbers reflect what the commands achieve.
+ */
+public class Bench {
+
+    // Upper bound on threads * files and threads * rounds; each operation keeps one latency sample.
+    public static final int MAX_OPERATIONS = 1_000_000;
+    // Upper bound on threads * buffer size, since every worker allocates its own buffer.
+    public static final long MAX_BUFFER_BYTES = 1L << 30;
+
+    public record Options(long fileSize, int threads, int bufferSize, int files, int rounds) {
+    }
+
+    // Per-operation latencies of one benchmark, together with its wall time and work done.
+    private record Result(String name, long[] latencies, long wallNanos, double units, String unit) {
+    }
+
+    private interface Operation {
+        // Performs operation i of the given worker and returns the units of work it did.
+        double run(int worker, int i) throws IOException;
+    }
+
+    // The commands report failures on stdout, which is discarded while timing, so results are checked.
+    private interface Check {
+        boolean succeeded(int worker, int i);
+    }
+
+    public static void io(Path parent, Options options) throws IOException {
+        if ((long) options.threads() * Math.max(options.files(), options.rounds()) > MAX_OPERATIONS) {
+            throw new IllegalArgumentException("threads * files and threads * rounds must not exceed " + MAX_OPERATIONS);
+        }
+        if ((long) options.threads() * options.bufferSize() > MAX_BUFFER_BYTES) {
+            throw new IllegalArgumentException("threads * buffer must not exceed " + MAX_BUFFER_BYTES + " bytes");
+        }
+        Path root = Files.createTempDirectory(parent, ".bench-");
+        System.out.println("bench: io in " + root + " (threads " + options.threads() + ", size "
+                + options.fileSize() + " bytes, buffer " + options.bufferSize() + " bytes, files "
+                + options.files() + " per thread, rounds " + options.rounds() + ")");
+
+        ExecutorService pool = Executors.newFixedThreadPool(options.threads());
+        PrintStream console = System.out;
+        List<Result> results = new ArrayList<>();
+        try {
+            for (int t = 0; t < options.threads(); t++) {
+                Files.createDirectory(root.resolve("w" + t));
+            }
+            System.setOut(new PrintStream(OutputStream.nullOutputStream()));
+
+            // cat > file: stdin is copied through a SessionInput into the file.
+            results.add(measure("seq write", pool, options.threads(), options.rounds(), "MB/s", (worker, i) -> {
+                Path file = root.resolve("w" + worker).resolve("data.bin");
+                try (InputStream in = new TextStream(options.fileSize());
+                     OutputStream out = Files.newOutputStream(file, StandardOpenOption.CREATE,
+                             StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING)) {
+                    return new SessionInput(in, options.bufferSize()).transferUntilMarker(out) / 1e6;
+                }
+            }, null));
+
+            // cat file: the file is streamed in chunks of the buffer size.
+            results.add(measure("seq read", pool, options.threads(), options.rounds(), "MB/s", (worker, i) -> {
+                Path file = root.resolve("w" + worker).resolve("data.bin");
+                CLI.copyContent(file, OutputStream.nullOutputStream(), options.bufferSize());
+                return Files.size(file) / 1e6;
+            }, null));
+
+            results.add(measure("touch", pool, options.threads(), options.files(), "ops/s", (worker, i) -> {
+                CLI.touch(root.resolve("w" + worker).resolve("f" + i).toString());
+                return 1;
+            }, (worker, i) -> Files.isRegularFile(root.resolve("w" + worker).resolve("f" + i))));
+
+            results.add(measure("ls", pool, options.threads(), options.rounds(), "entries/s", (worker, i) ->
+                    CLI.listDirectory(root.resolve("w" + worker), true, false).size(), null));
+
+            results.add(measure("rm", pool, options.threads(), options.files(), "ops/s", (worker, i) -> {
+                CLI.rm(root.resolve("w" + worker).resolve("f" + i).toString());
+                return 1;
+            }, (worker, i) -> !Files.exists(root.resolve("w" + worker).resolve("f" + i))));
+
+            results.add(measure("mkdir", pool, options.threads(), options.files(), "ops/s", (worker, i) -> {
+                CLI.mkdir(root.resolve("w" + worker).resolve("d" + i).toString());
+                return 1;
+            }, (worker, i) -> Files.isDirectory(root.resolve("w" + worker).resolve("d" + i))));
+
+            results.add(measure("rmdir", pool, options.threads(), options.files(), "ops/s", (worker, i) -> {
+                CLI.rmdir(root.resolve("w" + worker).resolve("d" + i).toString());
+                return 1;
+            }, (worker, i) -> !Files.exists(root.resolve("w" + worker).resolve("d" + i))));
+        } finally {
+            System.setOut(console);
+            // Workers of an aborted run must be gone before their directories are removed.
+            pool.shutdownNow();
+            boolean stopped = false;
+            try {
+                stopped = pool.awaitTermination(1, TimeUnit.MINUTES);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+            if (!stopped) {
+                System.out.println("bench: workers did not stop, leaving '" + root + "'");
+            } else {
+                try {
+                    deleteTree(root);
+                } catch (IOException | UncheckedIOException e) {
+                    System.out.println("bench: cannot remove '" + root + "': " + e.getMessage());
+                }
+            }
+        }
+
+        for (Result result : results) {
+            System.out.println(report(result));
+        }
+    }
+
+    // Runs count operations on each of threads workers and records every operation's latency.
+    // Results are checked once all workers are done, outside the timed window; any failed
+    // operation fails the benchmark rather than counting as throughput.
+    private static Result measure(String name, ExecutorService pool, int threads, int count, String unit,
+                                  Operation operation, Check check) throws IOException {
+        long[][] latencies = new long[threads][count];
+        double[] units = new double[threads];
+        List<Future<?>> workers = new ArrayList<>(threads);
+        CountDownLatch ready = new CountDownLatch(threads);
+        CountDownLatch go = new CountDownLatch(1);
+
+        for (int t = 0; t < threads; t++) {
+            int worker = t;
+            workers.add(pool.submit(() -> {
+                ready.countDown();
+                go.await();
+                for (int i = 0; i < count; i++) {
+                    long start = System.nanoTime();
+                    units[worker] += operation.run(worker, i);
+                    latencies[worker][i] = System.nanoTime() - start;
+                }
+                return null;
+            }));
+        }
+
+        try {
+            ready.await();
+            long start = System.nanoTime();
+            go.countDown();
+            for (Future<?> future : workers) {
+                future.get();
+            }
+            long wall = System.nanoTime() - start;
+
+            if (check != null) {
+                int failed = 0;
+                for (int t = 0; t < threads; t++) {
+                    for (int i = 0; i < count; i++) {
+                        if (!check.succeeded(t, i)) {
+                            failed++;
+                        }
+                    }
+                }
+                if (failed > 0) {
+                    throw new IOException(name + " failed for " + failed + " of " + threads * count + " operations");
+                }
+            }
+
+            long[] all = new long[threads * count];
+            double total = 0;
+            for (int t = 0; t < threads; t++) {
+                System.arraycopy(latencies[t], 0, all, t * count, count);
+                total += units[t];
+            }
+            Arrays.sort(all);
+            return new Result(name, all, wall, total, unit);
+        } catch (InterruptedException e) {
+            cancel(workers);
+            Thread.currentThread().interrupt();
+            throw new IOException("benchmark interrupted", e);
+        } catch (ExecutionException e) {
+            cancel(workers);
+            Throwable cause = e.getCause();
+            throw cause instanceof IOException ? (IOException) cause : new IOException(cause);
+        }
+    }
+
+    private static void cancel(List<Future<?>> workers) {
+        for (Future<?> future : workers) {
+            future.cancel(true);
+        }
+    }
+
+    private static String report(Result result) {
+        double throughput = result.units() / (result.wallNanos() / 1e9);
+        return String.format("  %-10s %12.1f %-10s p50 %s  p90 %s  p99 %s  max %s",
+                result.name(), throughput, result.unit(),
+                millis(percentile(result.latencies(), 50)), millis(percentile(result.latencies(), 90)),
+                millis(percentile(result.latencies(), 99)), millis(result.latencies()[result.latencies().length - 1]));
+    }
+
+    private static long percentile(long[] sorted, int p) {
+        if (sorted.length == 0) {
+            return 0;
+        }
+        int index = (int) Math.ceil(p / 100.0 * sorted.length) - 1;
+        return sorted[Math.max(0, index)];
+    }
+
+    private static String millis(long nanos) {
+        return String.format("%.3f ms", nanos / 1e6);
+    }
+
+    private static void deleteTree(Path root) throws IOException {
+        try (Stream<Path> walk = Files.walk(root)) {
+            for (Path path : walk.sorted(Comparator.reverseOrder()).toList()) {
+                Files.deleteIfExists(path);
+            }
+        }
+    }
+
+    // Generated text input of a fixed size, 79 characters and a newline per line like typed text.
+    private static class TextStream extends InputStream {
+        private static final byte[] LINE = ("abcdefghijklmnopqrstuvwxyzABCDEFGHIJKLMNOPQRSTUVWXYZ"
+                + "abcdefghijklmnopqrstuvwxyz0\n").getBytes();
+        private long remaining;
+        private int offset;
+
+        TextStream(long size) {
+            this.remaining = size;
+        }
+
+        @Override
+        public int read() {
+            byte[] one = new byte[1];
+            return read(one, 0, 1) < 0 ? -1 : one[0] & 0xff;
+        }
+
+        @Override
+        public int read(byte[] b, int off, int len) {
+            if (remaining == 0) {
+                return -1;
+            }
+            int n = (int) Math.min(len, remaining);
+            int done = 0;
+            while (done < n) {
+                int step = Math.min(n - done, LINE.length - offset);
+                System.arraycopy(LINE, offset, b, off + done, step);
+                done += step;
+                offset = (offset + step) % LINE.length;
+            }
+            remaining -= n;
+            return n;
+        }
+    }
+}
@@ -1,13 +1,12 @@
 package org.os;
 import java.io.*;
 import java.nio.file.*;
-import java.util.Scanner;
 import java.util.Arrays;
-import java.util.stream.Stream;
-import java.util.Comparator;
 import java.io.IOException;
 import java.nio.file.*;
 import java.util.Collections;
+import java.util.ArrayList;
+import java.util.List;
 import java.util.stream.Collectors;
 
 
@@ -15,6 +14,7 @@ public class CLI {
 
     public static Path currentDirectory = Paths.get("").toAbsolutePath();
     public static boolean running = true;
+    private static SessionInput input;
 
     public static Path getCurrentDirectory() {
         return currentDirectory;
@@ -24,20 +24,64 @@ public class CLI {
         currentDirectory = path;
     }
 
+    // The single reader over System.in; replaced only if System.in itself is reassigned.
+    public static SessionInput stdin() {
+        if (input == null || !input.wraps(System.in)) {
+            input = new SessionInput(System.in);
+        }
+        return input;
+    }
+
     public static void main(String[] args) {
-        Scanner scanner = new Scanner(System.in);
+        // One-shot mode: run a single command and exit without setting up the interactive loop.
+        if (args.length > 0 && args[0].equals("-c")) {
+            if (args.length > 1) {
+                processInput(String.join(" ", Arrays.copyOfRange(args, 1, args.length)).trim());
+            } else {
+                System.out.println("-c: missing command");
+            }
+            return;
+        }
 
-        while (running) {
-            System.out.print(currentDirectory + "> ");
-            String input = scanner.nextLine().trim();
-            processInput(input);
+        try {
+            while (running) {
+                System.out.print(currentDirectory + "> ");
+                String line = stdin().readLine();
+                if (line == null) {
+                    break;
+                }
+                processInput(line.trim());
+            }
+        } catch (IOException e) {
+            System.out.println("Error reading input: " + e.getMessage());
         }
+    }
 
-        scanner.close();
+    // Splits on whitespace by hand so that short runs never have to load the regex engine.
+    static String[] tokenize(String input) {
+        List<String> tokens = new ArrayList<>();
+        int start = -1;
+        for (int i = 0; i < input.length(); i++) {
+            if (Character.isWhitespace(input.charAt(i))) {
+                if (start >= 0) {
+                    tokens.add(input.substring(start, i));
+                    start = -1;
+                }
+            } else if (start < 0) {
+                start = i;
+            }
+        }
+        if (start >= 0) {
+            tokens.add(input.substring(start));
+        }
+        if (tokens.isEmpty()) {
+            tokens.add("");
+        }
+        return tokens.toArray(new String[0]);
     }
 
     public static void processInput(String input) {
-        String[] tokens = input.split("\\s+");
+        String[] tokens = tokenize(input);
 
 
         switch (tokens[0]) {
@@ -107,6 +151,26 @@ public class CLI {
             case "cat":
                 handleCat(tokens);
                 break;
+            case "sync":
+                sync(Arrays.copyOfRange(tokens, 1, tokens.length));
+                break;
+            case "index":
+                if (tokens.length == 2) {
+                    index(tokens[1]);
+                } else {
+                    System.out.println("index: usage: index <dir>");
+                }
+                break;
+            case "search":
+                if (tokens.length > 1) {
+                    search(Arrays.copyOfRange(tokens, 1, tokens.length));
+                } else {
+                    System.out.println("search: missing search terms");
+                }
+                break;
+            case "bench":
+                bench(Arrays.copyOfRange(tokens, 1, tokens.length));
+                break;
             case "exit":
                 exitCLI();
                 break;
@@ -143,34 +207,39 @@ public class CLI {
 
         try {
             System.out.println("Listing files in: " + currentDirectory);
-            Stream<Path> filesStream = Files.list(currentDirectory);
-
-            if (!showAll) {
-                filesStream = filesStream.filter(path -> !path.getFileName().toString().startsWith("."));
+            for (Path path : listDirectory(currentDirectory, showAll, reverseOrder)) {
+                System.out.println(path);
             }
 
-            var filesList = filesStream.collect(Collectors.toList());
-
-            filesList.sort(Comparator.comparing(Path::getFileName));
+        } catch (IOException e) {
+            System.out.println("Error reading directory: " + e.getMessage());
+        }
+    }
 
-            if (reverseOrder) {
-                Collections.reverse(filesList);
+    static List<Path> listDirectory(Path dir, boolean showAll, boolean reverseOrder) throws IOException {
+        List<Path> filesList = new ArrayList<>();
+        try (DirectoryStream<Path> entries = Files.newDirectoryStream(dir)) {
+            for (Path path : entries) {
+                if (showAll || !path.getFileName().toString().startsWith(".")) {
+                    filesList.add(path.getFileName());
+                }
             }
+        }
 
-            for (Path path : filesList) {
-                System.out.println(path.getFileName());
-            }
+        Collections.sort(filesList);
 
-        } catch (IOException e) {
-            System.out.println("Error reading directory: " + e.getMessage());
+        if (reverseOrder) {
+            Collections.reverse(filesList);
         }
+        return filesList;
     }
     public static void lsGrep(String searchTerm) {
-        try (Stream<Path> stream = Files.list(currentDirectory)) {
-            stream
-                    .filter(path -> path.getFileName().toString().contains(searchTerm))
-                    .map(Path::getFileName)
-                    .forEach(System.out::println);
+        try (DirectoryStream<Path> entries = Files.newDirectoryStream(currentDirectory)) {
+            for (Path path : entries) {
+                if (path.getFileName().toString().contains(searchTerm)) {
+                    System.out.println(path.getFileName());
+                }
+            }
         } catch (IOException e) {
             e.printStackTrace();
         }
@@ -290,6 +359,204 @@ public class CLI {
 
 
 
+    public static void sync(String... args) {
+        boolean delete = false;
+        long modifyWindowMillis = 0;
+        int first = 0;
+        while (first < args.length && args[first].startsWith("-")) {
+            if (args[first].equals("-delete")) {
+                delete = true;
+                first++;
+            } else if (args[first].equals("-modify-window") && first + 1 < args.length) {
+                try {
+                    modifyWindowMillis = Math.multiplyExact(Long.parseLong(args[first + 1]), 1000L);
+                } catch (NumberFormatException | ArithmeticException e) {
+                    System.out.println("sync: invalid modify window: " + args[first + 1]);
+                    return;
+                }
+                if (modifyWindowMillis < 0) {
+                    System.out.println("sync: invalid modify window: " + args[first + 1]);
+                    return;
+                }
+                first += 2;
+            } else {
+                System.out.println("Invalid option: " + args[first]);
+                return;
+            }
+        }
+        if (args.length - first != 2) {
+            System.out.println("sync: usage: sync [-delete] [-modify-window <seconds>] <src> <dst>");
+            return;
+        }
+
+        Path source = currentDirectory.resolve(args[first]).normalize();
+        Path target = currentDirectory.resolve(args[first + 1]).normalize();
+        if (!Files.isDirectory(source)) {
+            System.out.println("sync: '" + args[first] + "' is not a directory");
+            return;
+        }
+        if (target.startsWith(source) || source.startsWith(target)) {
+            System.out.println("sync: '" + args[first] + "' and '" + args[first + 1] + "' overlap");
+            return;
+        }
+
+        try {
+            Sync.Summary summary = Sync.run(source, target, delete, modifyWindowMillis);
+            System.out.println("sync: " + summary.filesScanned + " files scanned, "
+                    + summary.filesCopied + " copied, " + summary.filesUpdated + " updated, "
+                    + summary.filesUnchanged + " unchanged, " + summary.filesDeleted + " deleted");
+            System.out.println("sync: " + summary.bytesTransferred + " bytes transferred, "
+                    + summary.bytesSkipped + " bytes skipped");
+        } catch (IOException | UncheckedIOException e) {
+            System.out.println("sync: error syncing '" + args[first] + "': " + e.getMessage());
+        }
+    }
+
+    public static void index(String dirName) {
+        Path root = currentDirectory.resolve(dirName).normalize();
+        if (!Files.isDirectory(root)) {
+            System.out.println("index: '" + dirName + "' is not a directory");
+            return;
+        }
+        try {
+            long start = System.nanoTime();
+            Index.Stats stats = Index.build(root);
+            long millis = (System.nanoTime() - start) / 1_000_000;
+            System.out.println("index: " + stats.files() + " files (" + stats.reindexed() + " reindexed, "
+                    + stats.removed() + " removed), " + stats.terms() + " terms in " + millis + " ms");
+        } catch (IOException | UncheckedIOException e) {
+            System.out.println("index: error indexing '" + dirName + "': " + e.getMessage());
+        }
+    }
+
+    public static void search(String... terms) {
+        Path root;
+        if (terms.length > 0 && terms[0].equals("-d")) {
+            if (terms.length < 3) {
+                System.out.println("search: usage: search [-d <dir>] <terms>");
+                return;
+            }
+            root = Index.find(currentDirectory.resolve(terms[1]).normalize());
+            terms = Arrays.copyOfRange(terms, 2, terms.length);
+        } else {
+            root = Index.find(currentDirectory);
+        }
+        if (root == null) {
+            System.out.println("search: no index in this directory or its parents; "
+                    + "run 'index <dir>', then search inside dir or use 'search -d <dir> <terms>'");
+            return;
+        }
+
+        // Terms are AND-ed; an OR keyword starts a new alternative.
+        List<List<String>> query = new ArrayList<>();
+        List<String> group = new ArrayList<>();
+        for (String term : terms) {
+            if (term.equals("OR")) {
+                if (!group.isEmpty()) {
+                    query.add(group);
+                }
+                group = new ArrayList<>();
+            } else if (!term.equals("AND")) {
+                group.add(term);
+            }
+        }
+        if (!group.isEmpty()) {
+            query.add(group);
+        }
+
+        try {
+            List<Index.Hit> hits = Index.search(root, query);
+            if (hits.isEmpty()) {
+                System.out.println("search: no matches");
+            }
+            for (Index.Hit hit : hits) {
+                Path path = currentDirectory.relativize(root.resolve(hit.path()));
+                System.out.println(path + ": " + Arrays.stream(hit.lines())
+                        .mapToObj(String::valueOf)
+                        .collect(Collectors.joining(", ")));
+            }
+        } catch (IOException e) {
+            System.out.println("search: error reading index: " + e.getMessage());
+        }
+    }
+
+    public static void bench(String... args) {
+        if (args.length == 0 || !args[0].equals("io")) {
+            System.out.println("bench: usage: bench io [-size <n>] [-threads <n>] [-buffer <n>] [-files <n>] [-rounds <n>]");
+            return;
+        }
+
+        long fileSize = 64L << 20;
+        int threads = 1;
+        int bufferSize = 64 << 10;
+        int files = 1000;
+        int rounds = 3;
+        try {
+            for (int i = 1; i < args.length; i += 2) {
+                if (i + 1 >= args.length) {
+                    System.out.println("bench: missing value for " + args[i]);
+                    return;
+                }
+                long value = parseSize(args[i + 1]);
+                if (value <= 0) {
+                    System.out.println("bench: " + args[i] + " must be positive");
+                    return;
+                }
+                switch (args[i]) {
+                    case "-size":
+                        fileSize = value;
+                        break;
+                    case "-threads":
+                        threads = (int) Math.min(value, 1024);
+                        break;
+                    case "-buffer":
+                        bufferSize = (int) Math.min(value, 1 << 30);
+                        break;
+                    case "-files":
+                        files = (int) Math.min(value, 1_000_000);
+                        break;
+                    case "-rounds":
+                        rounds = (int) Math.min(value, 1_000_000);
+                        break;
+                    default:
+                        System.out.println("Invalid option: " + args[i]);
+                        return;
+                }
+            }
+        } catch (NumberFormatException e) {
+            System.out.println("bench: invalid number: " + e.getMessage());
+            return;
+        } catch (ArithmeticException e) {
+            System.out.println("bench: invalid size: value is too large");
+            return;
+        }
+        if ((long) threads * Math.max(files, rounds) > Bench.MAX_OPERATIONS) {
+            System.out.println("bench: threads * files and threads * rounds must not exceed " + Bench.MAX_OPERATIONS);
+            return;
+        }
+        if ((long) threads * bufferSize > Bench.MAX_BUFFER_BYTES) {
+            System.out.println("bench: threads * buffer must not exceed " + Bench.MAX_BUFFER_BYTES + " bytes");
+            return;
+        }
+
+        try {
+            Bench.io(currentDirectory, new Bench.Options(fileSize, threads, bufferSize, files, rounds));
+        } catch (IOException | UncheckedIOException e) {
+            System.out.println("bench: error: " + e.getMessage());
+        }
+    }
+
+    // Parses a count or byte size with an optional K, M or G suffix.
+    static long parseSize(String value) {
+        long multiplier = 1;
+        char suffix = Character.toUpperCase(value.charAt(value.length() - 1));
+        if (suffix == 'K' || suffix == 'M' || suffix == 'G') {
+            multiplier = suffix == 'K' ? 1L << 10 : suffix == 'M' ? 1L << 20 : 1L << 30;
+            value = value.substring(0, value.length() - 1);
+        }
+        return Math.multiplyExact(Long.parseLong(value), multiplier);
+    }
+
     public static void handleCat(String[] tokens) {
         int redirectIndex = -1;
         boolean append = false;
@@ -317,27 +584,21 @@ public class CLI {
     }
 
     public static void cat(String... args) {
-        Scanner scanner = new Scanner(System.in);
-
         if (args.length == 0) {
             System.out.println("Enter text (type 'EOF' on a new line to finish):");
-
-            StringBuilder content = new StringBuilder();
-            String line;
-
-            while (!(line = scanner.nextLine()).equals("EOF")) {
-                content.append(line).append(System.lineSeparator());
+            try {
+                stdin().transferUntilMarker(System.out);
+            } catch (IOException e) {
+                System.out.println("cat: error reading input: " + e.getMessage());
             }
 
-            System.out.println("\nYou entered:\n" + content.toString());
-
         } else {
             for (String fileName : args) {
                 Path filePath = currentDirectory.resolve(fileName);
 
                 if (Files.exists(filePath)) {
                     try {
-                        Files.lines(filePath).forEach(System.out::println);
+                        copyContent(filePath, System.out);
                     } catch (IOException e) {
                         System.out.println("cat: error reading file '" + fileName + "': " + e.getMessage());
                     }
@@ -351,12 +612,8 @@ public class CLI {
                     }
 
                     System.out.println("Enter text to write to " + fileName + " (type 'EOF' on a new line to finish):");
-                    try (BufferedWriter writer = Files.newBufferedWriter(filePath, StandardOpenOption.TRUNCATE_EXISTING)) {
-                        String line;
-                        while (!(line = scanner.nextLine()).equals("EOF")) {
-                            writer.write(line);
-                            writer.newLine();
-                        }
+                    try (OutputStream out = Files.newOutputStream(filePath, StandardOpenOption.TRUNCATE_EXISTING)) {
+                        stdin().transferUntilMarker(out);
                         System.out.println("Text written to file: " + fileName);
                     } catch (IOException e) {
                         System.out.println("cat: error writing to file '" + fileName + "': " + e.getMessage());
@@ -370,28 +627,15 @@ public class CLI {
         Path filePath = currentDirectory.resolve(fileName);
         StandardOpenOption option = append ? StandardOpenOption.APPEND : StandardOpenOption.TRUNCATE_EXISTING;
 
-        try (BufferedWriter writer = Files.newBufferedWriter(filePath, StandardOpenOption.CREATE, option)) {
+        try (OutputStream out = Files.newOutputStream(filePath, StandardOpenOption.CREATE, StandardOpenOption.WRITE, option)) {
             if (fileArgs.length == 0) {
                 System.out.println("Enter content (type 'EOF' on a new line to finish):");
-
-                Scanner scanner = new Scanner(System.in);
-                String line;
-                while (!(line = scanner.nextLine()).equals("EOF")) {
-                    writer.write(line);
-                    writer.newLine();
-                }
+                stdin().transferUntilMarker(out);
             } else {
                 for (String arg : fileArgs) {
                     Path sourcePath = currentDirectory.resolve(arg);
                     if (Files.exists(sourcePath)) {
-                        Files.lines(sourcePath).forEach(line -> {
-                            try {
-                                writer.write(line);
-                                writer.newLine();
-                            } catch (IOException e) {
-                                System.out.println("cat: error writing to file '" + fileName + "': " + e.getMessage());
-                            }
-                        });
+                        copyContent(sourcePath, out);
                     } else {
                         System.out.println("cat: file not found '" + arg + "'");
                     }
@@ -403,6 +647,27 @@ public class CLI {
         }
     }
 
+    // Streams a file in fixed-size chunks, ending it with a line separator if it lacks one.
+    private static void copyContent(Path path, OutputStream out) throws IOException {
+        copyContent(path, out, SessionInput.CHUNK_SIZE);
+    }
+
+    static void copyContent(Path path, OutputStream out, int chunkSize) throws IOException {
+        byte[] chunk = new byte[chunkSize];
+        int last = '\n';
+        try (InputStream in = Files.newInputStream(path)) {
+            int read;
+            while ((read = in.read(chunk)) > 0) {
+                out.write(chunk, 0, read);
+                last = chunk[read - 1];
+            }
+        }
+        if (last != '\n') {
+            out.write(System.lineSeparator().getBytes());
+        }
+        out.flush();
+    }
+
     public static void exitCLI() {
         System.out.println("Exiting the CLI...");
         running = false;
@@ -421,6 +686,10 @@ public class CLI {
         System.out.println("  mv <file1> <file2>: rename file1 to file2 or move file1 to file2 directory if exists.");
         System.out.println("  rm <file>: Remove a file.");
         System.out.println("  cat <file>: Display the contents of a file.");
+        System.out.println("  sync [-delete] [-modify-window <s>] <src> <dst>: Mirror directory src into dst, copying only changed blocks.");
+        System.out.println("  index <dir>: Build or refresh the full-text index of dir.");
+        System.out.println("  search [-d <dir>] <terms>: List files and lines in the nearest index containing all terms (use OR between alternatives).");
+        System.out.println("  bench io [-size <n>] [-threads <n>] [-buffer <n>] [-files <n>] [-rounds <n>]: Benchmark file I/O in the current directory.");
         System.out.println("  exit: Terminate the CLI.");
         System.out.println("  help: Display this help message.");
     }
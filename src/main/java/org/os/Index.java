@@ -0,0 +1,492 @@
+package org.os;
+import java.io.*;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.*;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+
+/**
+ * Full-text inverted index over the files of a directory tree.
+ * The index is a segment file in the indexed directory, named .cli-index.N where N is the
+ * generation. Each build writes the next generation and then removes the older ones, so a
+ * segment that is still mapped by a search is never overwritten. A segment is laid out as:
+ * <pre>
+ *   int magic, int version
+ *   int fileCount, then per file: varint pathLength, path bytes, long mtime, long size
+ *   int termCount, then termCount int offsets of the term entries (sorted by term)
+ *   per term: varint termLength, term bytes, varint docCount,
+ *             then per doc: varint fileIdDelta, varint lineCount, varint lineDelta...
+ * </pre>
+ * Searches memory-map the segment and binary search the term offsets.
+ */
+public class Index {
+
+    public static final String FILE_NAME = ".cli-index";
+    private static final int MAGIC = 0x4F53494E;
+    private static final int VERSION = 1;
+    private static final int MAX_TERM_LENGTH = 64;
+
+    public record Stats(int files, int reindexed, int removed, int terms) {
+    }
+
+    public record Hit(String path, int[] lines) {
+    }
+
+    private record FileEntry(String path, long mtime, long size) {
+    }
+
+    private record Posting(int file, int[] lines) {
+    }
+
+    // Growable list of line numbers for one term in one file.
+    private static class Lines {
+        int[] values = new int[4];
+        int count;
+
+        void add(int line) {
+            if (count > 0 && values[count - 1] == line) {
+                return;
+            }
+            if (count == values.length) {
+                values = Arrays.copyOf(values, count * 2);
+            }
+            values[count++] = line;
+        }
+
+        int[] toArray() {
+            return Arrays.copyOf(values, count);
+        }
+    }
+
+    public static Path find(Path dir) {
+        for (Path current = dir; current != null; current = current.getParent()) {
+            if (latestSegment(current) != null) {
+                return current;
+            }
+        }
+        return null;
+    }
+
+    // Returns the newest segment generation in dir, or null if dir is not indexed.
+    static Path latestSegment(Path dir) {
+        Path latest = null;
+        long newest = -1;
+        try (DirectoryStream<Path> entries = Files.newDirectoryStream(dir, FILE_NAME + ".*")) {
+            for (Path path : entries) {
+                long generation = generation(path);
+                if (generation > newest && Files.isRegularFile(path)) {
+                    newest = generation;
+                    latest = path;
+                }
+            }
+        } catch (IOException | DirectoryIteratorException e) {
+            return null;
+        }
+        return latest;
+    }
+
+    private static long generation(Path segment) {
+        String suffix = segment.getFileName().toString().substring(FILE_NAME.length() + 1);
+        if (suffix.isEmpty() || suffix.length() > 18) {
+            return -1;
+        }
+        for (int i = 0; i < suffix.length(); i++) {
+            if (suffix.charAt(i) < '0' || suffix.charAt(i) > '9') {
+                return -1;
+            }
+        }
+        return Long.parseLong(suffix);
+    }
+
+    public static Stats build(Path root) throws IOException {
+        Map<String, FileEntry> current = new HashMap<>();
+        // walkFileTree rather than Files.walk so unreadable entries are reported and skipped.
+        Files.walkFileTree(root, new SimpleFileVisitor<>() {
+            @Override
+            public FileVisitResult visitFile(Path path, BasicFileAttributes attrs) {
+                if (attrs.isRegularFile() && !path.getFileName().toString().startsWith(FILE_NAME)) {
+                    String rel = relative(root, path);
+                    current.put(rel, new FileEntry(rel, attrs.lastModifiedTime().toMillis(), attrs.size()));
+                }
+                return FileVisitResult.CONTINUE;
+            }
+
+            @Override
+            public FileVisitResult visitFileFailed(Path path, IOException e) {
+                System.out.println("index: cannot read '" + relative(root, path) + "': " + e.getMessage());
+                return FileVisitResult.CONTINUE;
+            }
+
+            @Override
+            public FileVisitResult postVisitDirectory(Path dir, IOException e) {
+                if (e != null) {
+                    System.out.println("index: cannot read '" + relative(root, dir) + "': " + e.getMessage());
+                }
+                return FileVisitResult.CONTINUE;
+            }
+        });
+
+        // Carry over postings of files whose mtime and size are unchanged since the last build.
+        Map<String, Map<String, int[]>> contents = new ConcurrentHashMap<>();
+        int removed = 0;
+        Path segment = latestSegment(root);
+        if (segment != null) {
+            removed = loadUnchanged(segment, current, contents);
+        }
+
+        List<String> changed = current.keySet().stream()
+                .filter(path -> !contents.containsKey(path))
+                .collect(Collectors.toList());
+        changed.parallelStream().forEach(path -> {
+            try {
+                contents.put(path, tokenize(root.resolve(path)));
+            } catch (IOException e) {
+                System.out.println("index: cannot read '" + path + "': " + e.getMessage());
+                contents.put(path, Collections.emptyMap());
+            }
+        });
+
+        List<FileEntry> files = current.values().stream()
+                .sorted(Comparator.comparing(FileEntry::path))
+                .collect(Collectors.toList());
+        int terms = write(root, segment == null ? 0 : generation(segment) + 1, files, contents);
+        return new Stats(files.size(), changed.size(), removed, terms);
+    }
+
+    /**
+     * Answers a query given as OR-ed groups of AND-ed terms.
+     * Each hit lists the lines on which any of the matched terms occur.
+     */
+    public static List<Hit> search(Path root, List<List<String>> query) throws IOException {
+        Path segment = latestSegment(root);
+        if (segment == null) {
+            throw new NoSuchFileException(root.resolve(FILE_NAME).toString(), null, "no index");
+        }
+        try (FileChannel channel = FileChannel.open(segment, StandardOpenOption.READ)) {
+            MappedByteBuffer buffer = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+            List<FileEntry> files = readHeader(buffer);
+            int termCount = buffer.getInt();
+            int offsetsStart = buffer.position();
+
+            Map<Integer, int[]> result = new TreeMap<>();
+            for (List<String> group : query) {
+                Map<Integer, int[]> matched = null;
+                for (String term : queryTerms(group)) {
+                    Map<Integer, int[]> postings = lookup(buffer, offsetsStart, termCount, term);
+                    matched = matched == null ? postings : intersect(matched, postings);
+                    if (matched.isEmpty()) {
+                        break;
+                    }
+                }
+                if (matched != null) {
+                    matched.forEach((file, lines) -> result.merge(file, lines, Index::union));
+                }
+            }
+
+            List<Hit> hits = new ArrayList<>(result.size());
+            result.forEach((file, lines) -> hits.add(new Hit(files.get(file).path(), lines)));
+            return hits;
+        } catch (RuntimeException e) {
+            // A damaged segment can fail in many ways (bad lengths, offsets or file IDs).
+            throw new IOException("corrupt index file", e);
+        }
+    }
+
+    // Splits query words exactly like file text, so "Hello," or "foo-bar" match what was indexed.
+    static List<String> queryTerms(List<String> words) {
+        List<String> terms = new ArrayList<>();
+        for (String word : words) {
+            Terms splitter = new Terms();
+            for (int i = 0; i < word.length(); i++) {
+                String term = splitter.next(word.charAt(i));
+                if (term != null) {
+                    terms.add(term);
+                }
+            }
+            String last = splitter.finish();
+            if (last != null) {
+                terms.add(last);
+            }
+        }
+        return terms;
+    }
+
+    private static Map<String, int[]> tokenize(Path path) throws IOException {
+        Map<String, Lines> terms = new HashMap<>();
+        try (Reader reader = new BufferedReader(new InputStreamReader(Files.newInputStream(path), StandardCharsets.UTF_8))) {
+            Terms splitter = new Terms();
+            int line = 1;
+            int c;
+            while ((c = reader.read()) != -1) {
+                if (c == 0) {
+                    // Binary content: nothing worth indexing.
+                    return Collections.emptyMap();
+                }
+                String term = splitter.next(c);
+                if (term != null) {
+                    terms.computeIfAbsent(term, k -> new Lines()).add(line);
+                }
+                if (c == '\n') {
+                    line++;
+                }
+            }
+            String last = splitter.finish();
+            if (last != null) {
+                terms.computeIfAbsent(last, k -> new Lines()).add(line);
+            }
+        }
+
+        Map<String, int[]> result = new HashMap<>(terms.size() * 2);
+        terms.forEach((term, lines) -> result.put(term, lines.toArray()));
+        return result;
+    }
+
+    // Splits text into lower-cased runs of letters and digits, truncated to MAX_TERM_LENGTH.
+    private static class Terms {
+        private final StringBuilder term = new StringBuilder();
+
+        // Feeds one character and returns the term it completes, if any.
+        String next(int c) {
+            if (Character.isLetterOrDigit(c)) {
+                if (term.length() < MAX_TERM_LENGTH) {
+                    term.append(Character.toLowerCase((char) c));
+                }
+                return null;
+            }
+            return finish();
+        }
+
+        String finish() {
+            if (term.length() == 0) {
+                return null;
+            }
+            String result = term.toString();
+            term.setLength(0);
+            return result;
+        }
+    }
+
+    private static int loadUnchanged(Path segment, Map<String, FileEntry> current,
+                                     Map<String, Map<String, int[]>> contents) throws IOException {
+        try {
+            // Read onto the heap rather than mapped, so no mapping of the old generation outlives the build.
+            ByteBuffer buffer = ByteBuffer.wrap(Files.readAllBytes(segment));
+            List<FileEntry> files = readHeader(buffer);
+            boolean[] keep = new boolean[files.size()];
+            int removed = 0;
+            for (int i = 0; i < files.size(); i++) {
+                FileEntry old = files.get(i);
+                FileEntry now = current.get(old.path());
+                if (now == null) {
+                    removed++;
+                } else if (now.mtime() == old.mtime() && now.size() == old.size()) {
+                    keep[i] = true;
+                    contents.put(old.path(), new HashMap<>());
+                }
+            }
+
+            int termCount = buffer.getInt();
+            buffer.position(buffer.position() + termCount * Integer.BYTES);
+            for (int t = 0; t < termCount; t++) {
+                String term = readString(buffer);
+                int docs = readVarint(buffer);
+                int file = 0;
+                for (int d = 0; d < docs; d++) {
+                    file += readVarint(buffer);
+                    int[] lines = readLines(buffer);
+                    if (keep[file]) {
+                        contents.get(files.get(file).path()).put(term, lines);
+                    }
+                }
+            }
+            return removed;
+        } catch (IOException | RuntimeException e) {
+            // An unreadable index is simply rebuilt from scratch.
+            contents.clear();
+            return 0;
+        }
+    }
+
+    private static int write(Path root, long generation, List<FileEntry> files,
+                             Map<String, Map<String, int[]>> contents) throws IOException {
+        TreeMap<String, List<Posting>> terms = new TreeMap<>();
+        for (int id = 0; id < files.size(); id++) {
+            int file = id;
+            contents.get(files.get(id).path()).forEach((term, lines) ->
+                    terms.computeIfAbsent(term, k -> new ArrayList<>()).add(new Posting(file, lines)));
+        }
+
+        ByteArrayOutputStream head = new ByteArrayOutputStream();
+        DataOutputStream headOut = new DataOutputStream(head);
+        headOut.writeInt(MAGIC);
+        headOut.writeInt(VERSION);
+        headOut.writeInt(files.size());
+        for (FileEntry file : files) {
+            writeString(headOut, file.path());
+            headOut.writeLong(file.mtime());
+            headOut.writeLong(file.size());
+        }
+        headOut.writeInt(terms.size());
+
+        ByteArrayOutputStream body = new ByteArrayOutputStream();
+        int[] offsets = new int[terms.size()];
+        int base = head.size() + terms.size() * Integer.BYTES;
+        int t = 0;
+        for (Map.Entry<String, List<Posting>> entry : terms.entrySet()) {
+            offsets[t++] = base + body.size();
+            writeString(body, entry.getKey());
+            writeVarint(body, entry.getValue().size());
+            int previousFile = 0;
+            for (Posting posting : entry.getValue()) {
+                writeVarint(body, posting.file() - previousFile);
+                previousFile = posting.file();
+                writeVarint(body, posting.lines().length);
+                int previousLine = 0;
+                for (int line : posting.lines()) {
+                    writeVarint(body, line - previousLine);
+                    previousLine = line;
+                }
+            }
+        }
+
+        Path segment = root.resolve(FILE_NAME + "." + generation);
+        Path temp = root.resolve(FILE_NAME + ".tmp");
+        try (DataOutputStream out = new DataOutputStream(new BufferedOutputStream(Files.newOutputStream(temp)))) {
+            head.writeTo(out);
+            for (int offset : offsets) {
+                out.writeInt(offset);
+            }
+            body.writeTo(out);
+        }
+        Files.move(temp, segment, StandardCopyOption.REPLACE_EXISTING);
+
+        // Older generations may still be mapped by a search; whatever cannot go now goes on a later build.
+        try (DirectoryStream<Path> entries = Files.newDirectoryStream(root, FILE_NAME + ".*")) {
+            for (Path old : entries) {
+                long oldGeneration = generation(old);
+                if (oldGeneration >= 0 && oldGeneration < generation) {
+                    try {
+                        Files.deleteIfExists(old);
+                    } catch (IOException ignored) {
+                    }
+                }
+            }
+        } catch (IOException | DirectoryIteratorException ignored) {
+        }
+        return terms.size();
+    }
+
+    private static List<FileEntry> readHeader(ByteBuffer buffer) throws IOException {
+        if (buffer.getInt() != MAGIC || buffer.getInt() != VERSION) {
+            throw new IOException("not an index file");
+        }
+        int count = buffer.getInt();
+        List<FileEntry> files = new ArrayList<>(count);
+        for (int i = 0; i < count; i++) {
+            files.add(new FileEntry(readString(buffer), buffer.getLong(), buffer.getLong()));
+        }
+        return files;
+    }
+
+    private static Map<Integer, int[]> lookup(ByteBuffer buffer, int offsetsStart, int termCount, String term) {
+        int low = 0;
+        int high = termCount - 1;
+        while (low <= high) {
+            int mid = (low + high) >>> 1;
+            buffer.position(buffer.getInt(offsetsStart + mid * Integer.BYTES));
+            int cmp = readString(buffer).compareTo(term);
+            if (cmp < 0) {
+                low = mid + 1;
+            } else if (cmp > 0) {
+                high = mid - 1;
+            } else {
+                int docs = readVarint(buffer);
+                Map<Integer, int[]> postings = new TreeMap<>();
+                int file = 0;
+                for (int d = 0; d < docs; d++) {
+                    file += readVarint(buffer);
+                    postings.put(file, readLines(buffer));
+                }
+                return postings;
+            }
+        }
+        return Collections.emptyMap();
+    }
+
+    private static Map<Integer, int[]> intersect(Map<Integer, int[]> left, Map<Integer, int[]> right) {
+        Map<Integer, int[]> result = new TreeMap<>();
+        left.forEach((file, lines) -> {
+            int[] other = right.get(file);
+            if (other != null) {
+                result.put(file, union(lines, other));
+            }
+        });
+        return result;
+    }
+
+    private static int[] union(int[] a, int[] b) {
+        int[] result = new int[a.length + b.length];
+        int i = 0;
+        int j = 0;
+        int n = 0;
+        while (i < a.length || j < b.length) {
+            int next = j == b.length || (i < a.length && a[i] <= b[j]) ? a[i++] : b[j++];
+            if (n == 0 || result[n - 1] != next) {
+                result[n++] = next;
+            }
+        }
+        return Arrays.copyOf(result, n);
+    }
+
+    private static int[] readLines(ByteBuffer buffer) {
+        int[] lines = new int[readVarint(buffer)];
+        int line = 0;
+        for (int i = 0; i < lines.length; i++) {
+            line += readVarint(buffer);
+            lines[i] = line;
+        }
+        return lines;
+    }
+
+    private static String readString(ByteBuffer buffer) {
+        byte[] bytes = new byte[readVarint(buffer)];
+        buffer.get(bytes);
+        return new String(bytes, StandardCharsets.UTF_8);
+    }
+
+    private static void writeString(OutputStream out, String value) throws IOException {
+        byte[] bytes = value.getBytes(StandardCharsets.UTF_8);
+        writeVarint(out, bytes.length);
+        out.write(bytes);
+    }
+
+    static int readVarint(ByteBuffer buffer) {
+        int value = 0;
+        for (int shift = 0; ; shift += 7) {
+            byte b = buffer.get();
+            value |= (b & 0x7f) << shift;
+            if (b >= 0) {
+                return value;
+            }
+        }
+    }
+
+    static void writeVarint(OutputStream out, int value) throws IOException {
+        while ((value & ~0x7f) != 0) {
+            out.write((value & 0x7f) | 0x80);
+            value >>>= 7;
+        }
+        out.write(value);
+    }
+
+    private static String relative(Path root, Path path) {
+        return root.relativize(path).toString().replace(File.separatorChar, '/');
+    }
+}
@@ -0,0 +1,176 @@
+package org.os;
+import java.io.*;
+import java.nio.charset.Charset;
+
+
+/**
+ * Buffered reader over the session's standard input, shared by the REPL and by commands.
+ * Everything that reads stdin goes through one instance so no reader can swallow
+ * bytes that are buffered for another, and bulk input is passed on in fixed-size
+ * chunks instead of being collected in memory.
+ */
+public class SessionInput {
+
+    static final int CHUNK_SIZE = 64 * 1024;
+    private static final byte[] MARKER = {'E', 'O', 'F'};
+
+    private final InputStream in;
+    private final byte[] buffer;
+    private int pos;
+    private int limit;
+    private boolean eof;
+
+    public SessionInput(InputStream in) {
+        this(in, CHUNK_SIZE);
+    }
+
+    public SessionInput(InputStream in, int bufferSize) {
+        this.in = in;
+        this.buffer = new byte[Math.max(bufferSize, MARKER.length + 2)];
+    }
+
+    public boolean wraps(InputStream stream) {
+        return in == stream;
+    }
+
+    /** Reads one line without its terminator, or returns null at end of input. */
+    public String readLine() throws IOException {
+        ByteArrayOutputStream line = new ByteArrayOutputStream();
+        while (true) {
+            if (pos == limit && !fill()) {
+                if (line.size() == 0) {
+                    return null;
+                }
+                break;
+            }
+            int newline = indexOf('\n', pos, limit);
+            if (newline >= 0) {
+                line.write(buffer, pos, newline - pos);
+                pos = newline + 1;
+                break;
+            }
+            line.write(buffer, pos, limit - pos);
+            pos = limit;
+        }
+        byte[] bytes = line.toByteArray();
+        int length = bytes.length;
+        if (length > 0 && bytes[length - 1] == '\r') {
+            length--;
+        }
+        return new String(bytes, 0, length, Charset.defaultCharset());
+    }
+
+    /**
+     * Copies input to out until a line consisting only of "EOF" or the end of input.
+     * The marker line is consumed but not copied. Returns the number of bytes copied.
+     */
+    public long transferUntilMarker(OutputStream out) throws IOException {
+        long copied = 0;
+        boolean lineStart = true;
+        while (true) {
+            if (lineStart) {
+                lookahead(MARKER.length + 2);
+                if (atMarker()) {
+                    return copied;
+                }
+            }
+            if (pos == limit && !fill()) {
+                out.flush();
+                return copied;
+            }
+            // Write whole runs of lines at once, stopping only before a line that may be the marker.
+            int end = pos;
+            lineStart = false;
+            while (true) {
+                int newline = indexOf('\n', end, limit);
+                if (newline < 0) {
+                    end = limit;
+                    break;
+                }
+                end = newline + 1;
+                if (end == limit || buffer[end] == MARKER[0]) {
+                    lineStart = true;
+                    break;
+                }
+            }
+            out.write(buffer, pos, end - pos);
+            copied += end - pos;
+            pos = end;
+        }
+    }
+
+    // Consumes the marker line if the buffered input starts with one.
+    private boolean atMarker() {
+        int available = limit - pos;
+        if (available < MARKER.length) {
+            return false;
+        }
+        for (int i = 0; i < MARKER.length; i++) {
+            if (buffer[pos + i] != MARKER[i]) {
+                return false;
+            }
+        }
+        int next = pos + MARKER.length;
+        if (next == limit) {
+            if (!eof) {
+                return false;
+            }
+            pos = next;
+            return true;
+        }
+        if (buffer[next] == '\n') {
+            pos = next + 1;
+            return true;
+        }
+        if (buffer[next] == '\r' && next + 1 < limit && buffer[next + 1] == '\n') {
+            pos = next + 2;
+            return true;
+        }
+        return false;
+    }
+
+    // Buffers at least n bytes unless a full line or the end of input is already available,
+    // so an interactive line is never held back waiting for the next one.
+    private void lookahead(int n) throws IOException {
+        while (limit - pos < n && indexOf('\n', pos, limit) < 0 && !eof) {
+            if (limit == buffer.length) {
+                compact();
+            }
+            int read = in.read(buffer, limit, buffer.length - limit);
+            if (read < 0) {
+                eof = true;
+            } else {
+                limit += read;
+            }
+        }
+    }
+
+    private boolean fill() throws IOException {
+        if (eof) {
+            return false;
+        }
+        compact();
+        int read = in.read(buffer, limit, buffer.length - limit);
+        if (read < 0) {
+            eof = true;
+            return false;
+        }
+        limit += read;
+        return true;
+    }
+
+    private void compact() {
+        System.arraycopy(buffer, pos, buffer, 0, limit - pos);
+        limit -= pos;
+        pos = 0;
+    }
+
+    private int indexOf(int b, int from, int to) {
+        for (int i = from; i < to; i++) {
+            if (buffer[i] == b) {
+                return i;
+            }
+        }
+        return -1;
+    }
+}
@@ -0,0 +1,438 @@
+package org.os;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.*;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.nio.file.attribute.FileTime;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.*;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicLong;
+
+
+/**
+ * Mirrors a source directory tree into a destination tree.
+ * Files with the same size and modification time are skipped; changed files are
+ * updated with an rsync-style delta so only blocks that differ are written again.
+ * Scanning, block hashing and copying run as overlapping pipeline stages.
+ */
+public class Sync {
+
+    static final int BLOCK_SIZE = 2048;
+    private static final int BLOCKS_PER_TASK = 1024;
+    private static final int MOD = 1 << 16;
+    private static final int WINDOW_SIZE = 1 << 20;
+
+    public static class Summary {
+        public final AtomicLong filesScanned = new AtomicLong();
+        public final AtomicLong filesCopied = new AtomicLong();
+        public final AtomicLong filesUpdated = new AtomicLong();
+        public final AtomicLong filesUnchanged = new AtomicLong();
+        public final AtomicLong filesDeleted = new AtomicLong();
+        public final AtomicLong bytesTransferred = new AtomicLong();
+        public final AtomicLong bytesSkipped = new AtomicLong();
+    }
+
+    // One full block of the destination file: its offset index, weak rolling sum and strong digest.
+    private record Block(int index, int weak, byte[] strong) {
+    }
+
+    /**
+     * Mirrors source into target. Modification times must match exactly unless modifyWindowMillis
+     * is positive; a window of 2000 suits FAT and exFAT, which store times in 2 s steps.
+     */
+    public static Summary run(Path source, Path target, boolean delete, long modifyWindowMillis) throws IOException {
+        Summary summary = new Summary();
+        int threads = Math.max(2, Runtime.getRuntime().availableProcessors());
+        ExecutorService hashPool = Executors.newFixedThreadPool(threads);
+        ExecutorService copyPool = Executors.newFixedThreadPool(Math.max(2, threads / 2));
+        // Bounds the number of files between the scan and copy stages so memory stays flat.
+        Semaphore inFlight = new Semaphore(threads * 4);
+        List<CompletableFuture<Void>> pending = new ArrayList<>();
+
+        try {
+            // walkFileTree rather than Files.walk so an unreadable directory or a vanished file
+            // is reported and skipped instead of aborting the whole scan.
+            Files.walkFileTree(source, new SimpleFileVisitor<>() {
+                @Override
+                public FileVisitResult preVisitDirectory(Path dir, BasicFileAttributes attrs) {
+                    try {
+                        Files.createDirectories(target.resolve(source.relativize(dir).toString()));
+                        return FileVisitResult.CONTINUE;
+                    } catch (IOException e) {
+                        System.out.println("sync: cannot create directory for '" + dir + "': " + e.getMessage());
+                        return FileVisitResult.SKIP_SUBTREE;
+                    }
+                }
+
+                @Override
+                public FileVisitResult visitFile(Path srcPath, BasicFileAttributes srcAttrs) {
+                    if (srcAttrs.isRegularFile()) {
+                        try {
+                            scan(srcPath, target.resolve(source.relativize(srcPath).toString()), srcAttrs);
+                        } catch (IOException e) {
+                            System.out.println("sync: error syncing '" + srcPath + "': " + e.getMessage());
+                        }
+                    }
+                    return FileVisitResult.CONTINUE;
+                }
+
+                @Override
+                public FileVisitResult visitFileFailed(Path path, IOException e) {
+                    System.out.println("sync: cannot read '" + path + "': " + e.getMessage());
+                    return FileVisitResult.CONTINUE;
+                }
+
+                @Override
+                public FileVisitResult postVisitDirectory(Path dir, IOException e) {
+                    if (e != null) {
+                        System.out.println("sync: cannot read '" + dir + "': " + e.getMessage());
+                    }
+                    return FileVisitResult.CONTINUE;
+                }
+
+                private void scan(Path srcPath, Path dstPath, BasicFileAttributes srcAttrs) throws IOException {
+                    summary.filesScanned.incrementAndGet();
+
+                    if (Files.isDirectory(dstPath)) {
+                        System.out.println("sync: cannot overwrite directory '" + dstPath + "' with a file");
+                        return;
+                    }
+                    boolean exists = Files.exists(dstPath);
+                    if (exists) {
+                        BasicFileAttributes dstAttrs = Files.readAttributes(dstPath, BasicFileAttributes.class);
+                        if (dstAttrs.size() == srcAttrs.size()
+                                && sameTime(dstAttrs.lastModifiedTime(), srcAttrs.lastModifiedTime(), modifyWindowMillis)) {
+                            summary.filesUnchanged.incrementAndGet();
+                            summary.bytesSkipped.addAndGet(srcAttrs.size());
+                            return;
+                        }
+                    }
+
+                    inFlight.acquireUninterruptibly();
+                    CompletableFuture<Void> task;
+                    if (exists) {
+                        task = signature(dstPath, hashPool)
+                                .thenAcceptAsync(blocks -> update(srcPath, dstPath, blocks, srcAttrs, summary), copyPool);
+                    } else {
+                        task = CompletableFuture.runAsync(() -> copy(srcPath, dstPath, srcAttrs, summary), copyPool);
+                    }
+                    pending.add(task.whenComplete((ignored, e) -> {
+                        inFlight.release();
+                        if (e != null) {
+                            Throwable cause = e instanceof CompletionException ? e.getCause() : e;
+                            System.out.println("sync: error syncing '" + srcPath + "': " + cause.getMessage());
+                        }
+                    }));
+                }
+            });
+        } finally {
+            try {
+                CompletableFuture.allOf(pending.toArray(new CompletableFuture<?>[0])).exceptionally(e -> null).join();
+            } finally {
+                hashPool.shutdown();
+                copyPool.shutdown();
+            }
+        }
+
+        if (delete) {
+            deleteExtraneous(source, target, summary);
+        }
+        return summary;
+    }
+
+    private static void copy(Path srcPath, Path dstPath, BasicFileAttributes srcAttrs, Summary summary) {
+        try {
+            Files.copy(srcPath, dstPath, StandardCopyOption.REPLACE_EXISTING);
+            Files.setLastModifiedTime(dstPath, srcAttrs.lastModifiedTime());
+            summary.filesCopied.incrementAndGet();
+            summary.bytesTransferred.addAndGet(srcAttrs.size());
+        } catch (IOException e) {
+            throw new CompletionException(e);
+        }
+    }
+
+    // Hashes the destination file's blocks in parallel, one task per run of BLOCKS_PER_TASK blocks.
+    private static CompletableFuture<Map<Integer, List<Block>>> signature(Path dstPath, ExecutorService hashPool) {
+        long size;
+        try {
+            size = Files.size(dstPath);
+        } catch (IOException e) {
+            return CompletableFuture.failedFuture(e);
+        }
+        int blocks = (int) Math.min(size / BLOCK_SIZE, Integer.MAX_VALUE);
+        List<CompletableFuture<List<Block>>> parts = new ArrayList<>();
+        for (int first = 0; first < blocks; first += BLOCKS_PER_TASK) {
+            int from = first;
+            int to = Math.min(blocks, first + BLOCKS_PER_TASK);
+            parts.add(CompletableFuture.supplyAsync(() -> hashBlocks(dstPath, from, to), hashPool));
+        }
+        return CompletableFuture.allOf(parts.toArray(new CompletableFuture<?>[0])).thenApply(ignored -> {
+            Map<Integer, List<Block>> table = new HashMap<>();
+            for (CompletableFuture<List<Block>> part : parts) {
+                for (Block block : part.join()) {
+                    table.computeIfAbsent(block.weak(), k -> new ArrayList<>(1)).add(block);
+                }
+            }
+            return table;
+        });
+    }
+
+    private static List<Block> hashBlocks(Path path, int from, int to) {
+        List<Block> result = new ArrayList<>(to - from);
+        try (FileChannel channel = FileChannel.open(path, StandardOpenOption.READ)) {
+            // Read rather than map: a live mapping would keep the file locked on Windows when it is replaced.
+            ByteBuffer buffer = ByteBuffer.allocate((to - from) * BLOCK_SIZE);
+            long position = (long) from * BLOCK_SIZE;
+            while (buffer.hasRemaining()) {
+                if (channel.read(buffer, position + buffer.position()) < 0) {
+                    throw new IOException("unexpected end of file");
+                }
+            }
+            MessageDigest md5 = md5();
+            for (int i = from; i < to; i++) {
+                int offset = (i - from) * BLOCK_SIZE;
+                int a = 0;
+                int b = 0;
+                for (int j = 0; j < BLOCK_SIZE; j++) {
+                    int x = buffer.get(offset + j) & 0xff;
+                    a += x;
+                    b += (BLOCK_SIZE - j) * x;
+                }
+                md5.update(buffer.slice(offset, BLOCK_SIZE));
+                result.add(new Block(i, weak(a % MOD, b % MOD), md5.digest()));
+            }
+        } catch (IOException e) {
+            throw new CompletionException(e);
+        }
+        return result;
+    }
+
+    // Rewrites dstPath from srcPath, reusing destination blocks found by rolling-checksum matching.
+    private static void update(Path srcPath, Path dstPath, Map<Integer, List<Block>> table,
+                               BasicFileAttributes srcAttrs, Summary summary) {
+        Path tempPath = dstPath.resolveSibling("." + dstPath.getFileName() + ".sync");
+        long literal = 0;
+        long matched = 0;
+        try (FileChannel src = FileChannel.open(srcPath, StandardOpenOption.READ);
+             FileChannel dst = FileChannel.open(dstPath, StandardOpenOption.READ);
+             FileChannel out = FileChannel.open(tempPath, StandardOpenOption.CREATE,
+                     StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING)) {
+            long length = src.size();
+            Window data = new Window(src, length);
+            MessageDigest md5 = md5();
+            long pos = 0;
+            long literalStart = 0;
+            int a = 0;
+            int b = 0;
+            boolean fresh = true;
+
+            while (!table.isEmpty() && pos + BLOCK_SIZE <= length) {
+                // Pending literal bytes are flushed once they would no longer fit in the window.
+                if (pos + BLOCK_SIZE + 1 - literalStart > WINDOW_SIZE) {
+                    literal += writeFully(out, data.slice(literalStart, (int) (pos - literalStart)));
+                    literalStart = pos;
+                }
+                data.cover(literalStart, Math.min(length, pos + BLOCK_SIZE + 1));
+
+                if (fresh) {
+                    a = 0;
+                    b = 0;
+                    for (int j = 0; j < BLOCK_SIZE; j++) {
+                        int x = data.get(pos + j);
+                        a += x;
+                        b += (BLOCK_SIZE - j) * x;
+                    }
+                    a %= MOD;
+                    b %= MOD;
+                    fresh = false;
+                }
+
+                Block match = null;
+                List<Block> candidates = table.get(weak(a, b));
+                if (candidates != null) {
+                    md5.update(data.slice(pos, BLOCK_SIZE));
+                    byte[] strong = md5.digest();
+                    for (Block candidate : candidates) {
+                        if (Arrays.equals(candidate.strong(), strong)) {
+                            match = candidate;
+                            break;
+                        }
+                    }
+                }
+
+                if (match != null) {
+                    literal += writeFully(out, data.slice(literalStart, (int) (pos - literalStart)));
+                    transferFully(dst, (long) match.index() * BLOCK_SIZE, out);
+                    matched += BLOCK_SIZE;
+                    pos += BLOCK_SIZE;
+                    literalStart = pos;
+                    fresh = true;
+                } else {
+                    if (pos + BLOCK_SIZE < length) {
+                        int out1 = data.get(pos);
+                        int in1 = data.get(pos + BLOCK_SIZE);
+                        a = Math.floorMod(a - out1 + in1, MOD);
+                        b = Math.floorMod(b - BLOCK_SIZE * out1 + a, MOD);
+                    }
+                    pos++;
+                }
+            }
+            // The unmatched tail is copied straight from the channel rather than through the window.
+            long tail = length - literalStart;
+            for (long done = 0; done < tail; ) {
+                long n = src.transferTo(literalStart + done, tail - done, out);
+                if (n <= 0) {
+                    throw new IOException("source changed during sync");
+                }
+                done += n;
+            }
+            literal += tail;
+        } catch (IOException e) {
+            try {
+                Files.deleteIfExists(tempPath);
+            } catch (IOException ignored) {
+            }
+            throw new CompletionException(e);
+        }
+
+        try {
+            Files.move(tempPath, dstPath, StandardCopyOption.REPLACE_EXISTING);
+            Files.setLastModifiedTime(dstPath, srcAttrs.lastModifiedTime());
+        } catch (IOException e) {
+            throw new CompletionException(e);
+        }
+        summary.filesUpdated.incrementAndGet();
+        summary.bytesTransferred.addAndGet(literal);
+        summary.bytesSkipped.addAndGet(matched);
+    }
+
+    private static void deleteExtraneous(Path source, Path target, Summary summary) throws IOException {
+        Files.walkFileTree(target, new SimpleFileVisitor<>() {
+            @Override
+            public FileVisitResult visitFile(Path path, BasicFileAttributes attrs) {
+                if (isExtraneous(path)) {
+                    delete(path, true);
+                }
+                return FileVisitResult.CONTINUE;
+            }
+
+            @Override
+            public FileVisitResult visitFileFailed(Path path, IOException e) {
+                System.out.println("sync: cannot read '" + path + "': " + e.getMessage());
+                return FileVisitResult.CONTINUE;
+            }
+
+            @Override
+            public FileVisitResult postVisitDirectory(Path dir, IOException e) {
+                if (e != null) {
+                    System.out.println("sync: cannot read '" + dir + "': " + e.getMessage());
+                }
+                if (!dir.equals(target) && isExtraneous(dir)) {
+                    delete(dir, false);
+                }
+                return FileVisitResult.CONTINUE;
+            }
+
+            private boolean isExtraneous(Path path) {
+                return !Files.exists(source.resolve(target.relativize(path).toString()), LinkOption.NOFOLLOW_LINKS);
+            }
+
+            private void delete(Path path, boolean file) {
+                try {
+                    Files.delete(path);
+                    if (file) {
+                        summary.filesDeleted.incrementAndGet();
+                    }
+                } catch (IOException e) {
+                    System.out.println("sync: failed to delete '" + path + "': " + e.getMessage());
+                }
+            }
+        });
+    }
+
+    // Heap window over a source file; reads rather than maps so the file is never left locked on Windows.
+    private static class Window {
+        private final FileChannel channel;
+        private final long size;
+        private final byte[] bytes = new byte[WINDOW_SIZE];
+        private long start;
+        private int length;
+
+        Window(FileChannel channel, long size) {
+            this.channel = channel;
+            this.size = size;
+        }
+
+        // Makes [from, to) available, sliding the window forward and refilling it as needed.
+        void cover(long from, long to) throws IOException {
+            if (from >= start && to <= start + length) {
+                return;
+            }
+            int keep = from >= start && from < start + length ? (int) (start + length - from) : 0;
+            if (keep > 0) {
+                System.arraycopy(bytes, (int) (from - start), bytes, 0, keep);
+            }
+            start = from;
+            length = keep;
+            ByteBuffer buffer = ByteBuffer.wrap(bytes, length, (int) Math.min(bytes.length - length, size - start - length));
+            while (buffer.hasRemaining()) {
+                if (channel.read(buffer, start + buffer.position()) < 0) {
+                    throw new IOException("source changed during sync");
+                }
+            }
+            length = buffer.position();
+            if (to > start + length) {
+                throw new IOException("source changed during sync");
+            }
+        }
+
+        int get(long position) {
+            return bytes[(int) (position - start)] & 0xff;
+        }
+
+        ByteBuffer slice(long position, int count) {
+            return ByteBuffer.wrap(bytes, (int) (position - start), count);
+        }
+    }
+
+    private static long writeFully(FileChannel out, ByteBuffer buffer) throws IOException {
+        long written = buffer.remaining();
+        while (buffer.hasRemaining()) {
+            out.write(buffer);
+        }
+        return written;
+    }
+
+    private static void transferFully(FileChannel from, long position, FileChannel out) throws IOException {
+        long done = 0;
+        while (done < BLOCK_SIZE) {
+            long n = from.transferTo(position + done, BLOCK_SIZE - done, out);
+            if (n <= 0) {
+                throw new IOException("destination changed during sync");
+            }
+            done += n;
+        }
+    }
+
+    static boolean sameTime(FileTime a, FileTime b, long modifyWindowMillis) {
+        if (modifyWindowMillis <= 0) {
+            return a.equals(b);
+        }
+        return Math.abs(a.toMillis() - b.toMillis()) <= modifyWindowMillis;
+    }
+
+    private static int weak(int a, int b) {
+        return a | (b << 16);
+    }
+
+    private static MessageDigest md5() {
+        try {
+            return MessageDigest.getInstance("MD5");
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+}
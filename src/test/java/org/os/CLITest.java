@@ -259,6 +259,16 @@ class CLITest {
         assertEquals("Initial content\nAppended content\n", fileContent, "cat >> command failed to append to file content");
     }
 
+    @Test
+    public void testCatLeavesRemainingInputForSession() throws IOException {
+        System.setIn(new ByteArrayInputStream("typed line\nEOF\nls -a\n".getBytes()));
+        CLI.handleCat(new String[]{"cat"});
+
+        assertTrue(outputStreamCaptor.toString().contains("typed line"), "cat failed to echo input");
+        assertEquals("ls -a", CLI.stdin().readLine(), "cat consumed input beyond the EOF marker");
+        assertNull(CLI.stdin().readLine());
+    }
+
     @Test
     public void testCatWithMultipleFilesDisplay() throws IOException {
         String filename1 = "file1.txt";
@@ -318,6 +328,220 @@ class CLITest {
 
 
 
+    @Test
+    public void testSyncCopiesThenSkipsUnchanged() throws IOException {
+        Path src = tempDir.resolve("src");
+        Files.createDirectories(src.resolve("sub"));
+        Files.write(src.resolve("a.txt"), "alpha\n".getBytes());
+        Files.write(src.resolve("sub").resolve("b.txt"), "beta\n".getBytes());
+
+        CLI.sync("src", "dst");
+        assertEquals("beta\n", Files.readString(tempDir.resolve("dst").resolve("sub").resolve("b.txt")));
+
+        outputStreamCaptor.reset();
+        CLI.sync("src", "dst");
+        assertTrue(outputStreamCaptor.toString().contains("2 unchanged"), "sync should skip unchanged files");
+        assertTrue(outputStreamCaptor.toString().contains("0 bytes transferred"), "sync should not transfer unchanged files");
+    }
+
+    @Test
+    public void testSyncDeltaUpdate() throws IOException {
+        Path src = tempDir.resolve("src");
+        Files.createDirectories(src);
+        byte[] original = new byte[Sync.BLOCK_SIZE * 16];
+        new java.util.Random(42).nextBytes(original);
+        Files.write(src.resolve("data.bin"), original);
+        CLI.sync("src", "dst");
+
+        byte[] changed = original.clone();
+        changed[Sync.BLOCK_SIZE * 8 + 3] ^= 1;
+        long synced = Files.getLastModifiedTime(src.resolve("data.bin")).toMillis();
+        Files.write(src.resolve("data.bin"), changed);
+        Files.setLastModifiedTime(src.resolve("data.bin"), java.nio.file.attribute.FileTime.fromMillis(synced + 1000));
+
+        outputStreamCaptor.reset();
+        CLI.sync("src", "dst");
+
+        assertArrayEquals(changed, Files.readAllBytes(tempDir.resolve("dst").resolve("data.bin")), "sync produced wrong content");
+        assertTrue(outputStreamCaptor.toString().contains("1 updated"), "sync should update the changed file");
+        assertTrue(outputStreamCaptor.toString().contains(Sync.BLOCK_SIZE * 15 + " bytes skipped"), "sync should reuse unchanged blocks");
+    }
+
+    @Test
+    public void testSyncTransfersQuickSameSizeRewrite() throws IOException {
+        Path file = tempDir.resolve("src").resolve("f");
+        Files.createDirectories(file.getParent());
+        Files.write(file, "v1\n".getBytes());
+        CLI.sync("src", "dst");
+
+        // Same size, rewritten within the 2 s a FAT-style window would ignore.
+        long synced = Files.getLastModifiedTime(file).toMillis();
+        Files.write(file, "v2\n".getBytes());
+        Files.setLastModifiedTime(file, java.nio.file.attribute.FileTime.fromMillis(synced + 1000));
+
+        CLI.sync("src", "dst");
+        assertEquals("v2\n", Files.readString(tempDir.resolve("dst").resolve("f")), "sync must not skip a quick same-size rewrite");
+    }
+
+    @Test
+    public void testSyncModifyWindowToleratesCoarseTimestamps() throws IOException {
+        Path src = tempDir.resolve("src");
+        Files.createDirectories(src);
+        Files.write(src.resolve("a.txt"), "alpha\n".getBytes());
+        Files.setLastModifiedTime(src.resolve("a.txt"), java.nio.file.attribute.FileTime.fromMillis(1_000_001_500L));
+        CLI.sync("src", "dst");
+
+        // A FAT-like destination rounds times down to 2 s steps.
+        Files.setLastModifiedTime(tempDir.resolve("dst").resolve("a.txt"), java.nio.file.attribute.FileTime.fromMillis(1_000_000_000L));
+
+        outputStreamCaptor.reset();
+        CLI.sync("-modify-window", "2", "src", "dst");
+        assertTrue(outputStreamCaptor.toString().contains("1 unchanged"), "sync -modify-window should ignore small time differences");
+
+        outputStreamCaptor.reset();
+        CLI.sync("src", "dst");
+        assertTrue(outputStreamCaptor.toString().contains("1 updated"), "sync should compare times exactly by default");
+    }
+
+    @Test
+    public void testSyncDelete() throws IOException {
+        Files.createDirectories(tempDir.resolve("src"));
+        Files.createDirectories(tempDir.resolve("dst"));
+        Files.write(tempDir.resolve("dst").resolve("stale.txt"), "stale".getBytes());
+
+        CLI.sync("src", "dst");
+        assertTrue(Files.exists(tempDir.resolve("dst").resolve("stale.txt")), "sync without -delete must keep extra files");
+
+        CLI.sync("-delete", "src", "dst");
+        assertFalse(Files.exists(tempDir.resolve("dst").resolve("stale.txt")), "sync -delete failed to remove extra file");
+    }
+
+    @Test
+    public void testIndexAndSearch() throws IOException {
+        Path docs = tempDir.resolve("docs");
+        Files.createDirectories(docs);
+        Files.write(docs.resolve("a.txt"), "hello world\nfoo bar\n".getBytes());
+        Files.write(docs.resolve("b.txt"), "bar baz\n".getBytes());
+
+        CLI.index("docs");
+        CLI.cd("docs");
+
+        outputStreamCaptor.reset();
+        CLI.search("bar", "hello");
+        String output = outputStreamCaptor.toString();
+        assertTrue(output.contains("a.txt: 1, 2"), "search AND query failed");
+        assertFalse(output.contains("b.txt"), "search AND query matched too many files");
+
+        outputStreamCaptor.reset();
+        CLI.search("hello", "OR", "baz");
+        output = outputStreamCaptor.toString();
+        assertTrue(output.contains("a.txt: 1") && output.contains("b.txt: 1"), "search OR query failed");
+    }
+
+    @Test
+    public void testSearchFromOutsideWithPunctuatedTerms() throws IOException {
+        Path docs = tempDir.resolve("docs");
+        Files.createDirectories(docs);
+        Files.write(docs.resolve("a.txt"), "intro\nfoo-bar, Hello!\n".getBytes());
+        CLI.index("docs");
+        CLI.index("docs");
+
+        outputStreamCaptor.reset();
+        CLI.search("-d", "docs", "Hello,", "foo-bar");
+        assertTrue(outputStreamCaptor.toString().contains("a.txt: 2"), "search should split query terms like file text");
+
+        try (Stream<Path> entries = Files.list(docs)) {
+            assertEquals(1, entries.filter(path -> path.getFileName().toString().startsWith(".cli-index")).count(),
+                    "index should keep only the newest segment generation");
+        }
+    }
+
+    @Test
+    public void testSearchReportsCorruptIndex() throws IOException {
+        ByteArrayOutputStream segment = new ByteArrayOutputStream();
+        DataOutputStream out = new DataOutputStream(segment);
+        out.writeInt(0x4F53494E);
+        out.writeInt(1);
+        out.writeInt(1);
+        out.write(new byte[]{(byte) 0xff, (byte) 0xff, (byte) 0xff, (byte) 0xff, 0x0f});
+        Files.write(tempDir.resolve(".cli-index.0"), segment.toByteArray());
+
+        CLI.processInput("search foo");
+        assertTrue(outputStreamCaptor.toString().contains("search: error reading index"), "search should report a corrupt index");
+    }
+
+    @Test
+    public void testIndexIsIncremental() throws IOException {
+        Path docs = tempDir.resolve("docs");
+        Files.createDirectories(docs);
+        Files.write(docs.resolve("a.txt"), "alpha\n".getBytes());
+        Files.write(docs.resolve("b.txt"), "beta\n".getBytes());
+        CLI.index("docs");
+
+        Files.write(docs.resolve("b.txt"), "gamma\n".getBytes());
+        Files.setLastModifiedTime(docs.resolve("b.txt"), java.nio.file.attribute.FileTime.fromMillis(0));
+        outputStreamCaptor.reset();
+        CLI.index("docs");
+        assertTrue(outputStreamCaptor.toString().contains("2 files (1 reindexed"), "index should only reprocess changed files");
+
+        CLI.cd("docs");
+        outputStreamCaptor.reset();
+        CLI.search("gamma");
+        assertTrue(outputStreamCaptor.toString().contains("b.txt: 1"), "search missed re-indexed content");
+        outputStreamCaptor.reset();
+        CLI.search("alpha");
+        assertTrue(outputStreamCaptor.toString().contains("a.txt: 1"), "search lost unchanged file");
+    }
+
+    @Test
+    public void testOneShotCommand() {
+        CLI.running = true;
+        CLI.main(new String[]{"-c", "mkdir", "oneShotDir"});
+        assertTrue(Files.isDirectory(tempDir.resolve("oneShotDir")), "-c mode failed to run the command");
+        assertTrue(CLI.running, "-c mode should not need the exit command");
+    }
+
+    @Test
+    public void testTokenizeCollapsesWhitespace() {
+        assertArrayEquals(new String[]{"ls", "-a", "-r"}, CLI.tokenize("ls \t -a   -r"));
+        assertArrayEquals(new String[]{""}, CLI.tokenize(""));
+    }
+
+    @Test
+    public void testBenchIo() throws IOException {
+        CLI.bench("io", "-size", "64K", "-threads", "2", "-buffer", "4K", "-files", "10", "-rounds", "1");
+        String output = outputStreamCaptor.toString();
+
+        for (String name : new String[]{"seq write", "seq read", "touch", "ls", "rm", "mkdir", "rmdir"}) {
+            assertTrue(output.contains(name), "bench output is missing " + name);
+        }
+        assertTrue(output.contains("p99"), "bench output should report percentiles");
+        try (Stream<Path> entries = Files.list(tempDir)) {
+            assertEquals(0, entries.count(), "bench should remove its temp directory");
+        }
+    }
+
+    @Test
+    public void testBenchRejectsOversizedOptions() {
+        CLI.bench("io", "-size", "99999999999G");
+        assertTrue(outputStreamCaptor.toString().contains("invalid size"), "bench should reject an overflowing size");
+
+        outputStreamCaptor.reset();
+        CLI.bench("io", "-threads", "1024", "-files", "1000000");
+        assertTrue(outputStreamCaptor.toString().contains("must not exceed"), "bench should cap the total number of operations");
+
+        outputStreamCaptor.reset();
+        CLI.bench("io", "-threads", "16", "-buffer", "1G");
+        assertTrue(outputStreamCaptor.toString().contains("threads * buffer must not exceed"), "bench should cap total buffer memory");
+    }
+
+    @Test
+    public void testParseSize() {
+        assertEquals(512, CLI.parseSize("512"));
+        assertEquals(64L << 10, CLI.parseSize("64K"));
+        assertEquals(2L << 30, CLI.parseSize("2g"));
+    }
+
     @Test
     public void testInvalidCommand() {
         CLI.processInput("invalidCommand");
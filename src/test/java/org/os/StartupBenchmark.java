@@ -0,0 +1,96 @@
+package org.os;
+import java.io.*;
+import java.nio.file.*;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+
+/**
+ * Measures shell startup against the packaged jar.
+ * For every configuration it reports time-to-first-prompt and time-to-exit of an
+ * interactive session, and time-to-exit of a one-shot "-c" command.
+ *
+ * It is a plain main class rather than a JUnit test. Build first, then run it from the
+ * project directory with the test classes on the classpath:
+ * <pre>
+ *   mvn package
+ *   java -cp target/test-classes org.os.StartupBenchmark [runs] [jar] [archive]
+ * </pre>
+ * runs defaults to 20, jar to target/cli.jar and archive to target/cli.jsa.
+ */
+public class StartupBenchmark {
+
+    public static void main(String[] args) throws Exception {
+        int runs = args.length > 0 ? Integer.parseInt(args[0]) : 20;
+        Path jar = Paths.get(args.length > 1 ? args[1] : "target/cli.jar");
+        Path archive = Paths.get(args.length > 2 ? args[2] : "target/cli.jsa");
+        String java = Paths.get(System.getProperty("java.home"), "bin", "java").toString();
+
+        if (!Files.exists(jar)) {
+            System.out.println("Jar not found: " + jar + " (run 'mvn package' first)");
+            return;
+        }
+
+        List<List<String>> configurations = new ArrayList<>();
+        configurations.add(List.of(java, "-Xshare:off", "-jar", jar.toString()));
+        configurations.add(List.of(java, "-jar", jar.toString()));
+        if (Files.exists(archive)) {
+            configurations.add(List.of(java, "-XX:SharedArchiveFile=" + archive, "-jar", jar.toString()));
+        }
+
+        for (List<String> command : configurations) {
+            long[] prompt = new long[runs];
+            long[] exit = new long[runs];
+            long[] oneShot = new long[runs];
+            for (int i = 0; i < runs; i++) {
+                long[] interactive = interactive(command);
+                prompt[i] = interactive[0];
+                exit[i] = interactive[1];
+                oneShot[i] = oneShot(command);
+            }
+            System.out.println(String.join(" ", command.subList(1, command.size())));
+            System.out.println("  time-to-first-prompt: " + report(prompt));
+            System.out.println("  time-to-exit:         " + report(exit));
+            System.out.println("  -c pwd time-to-exit:  " + report(oneShot));
+        }
+    }
+
+    // Returns {nanos until the prompt is printed, nanos until the process exits after "exit"}.
+    private static long[] interactive(List<String> command) throws IOException, InterruptedException {
+        long start = System.nanoTime();
+        Process process = new ProcessBuilder(command).redirectErrorStream(true).start();
+        InputStream out = process.getInputStream();
+        int previous = -1;
+        int c;
+        while ((c = out.read()) != -1 && !(previous == '>' && c == ' ')) {
+            previous = c;
+        }
+        long prompt = System.nanoTime() - start;
+
+        try (Writer in = new OutputStreamWriter(process.getOutputStream())) {
+            in.write("exit\n");
+        }
+        out.transferTo(OutputStream.nullOutputStream());
+        process.waitFor();
+        return new long[]{prompt, System.nanoTime() - start};
+    }
+
+    private static long oneShot(List<String> command) throws IOException, InterruptedException {
+        List<String> full = new ArrayList<>(command);
+        full.add("-c");
+        full.add("pwd");
+        long start = System.nanoTime();
+        Process process = new ProcessBuilder(full).redirectErrorStream(true).start();
+        process.getInputStream().transferTo(OutputStream.nullOutputStream());
+        process.waitFor();
+        return System.nanoTime() - start;
+    }
+
+    private static String report(long[] nanos) {
+        long[] sorted = nanos.clone();
+        Arrays.sort(sorted);
+        return String.format("min %.1f ms, median %.1f ms, max %.1f ms",
+                sorted[0] / 1e6, sorted[sorted.length / 2] / 1e6, sorted[sorted.length - 1] / 1e6);
+    }
+}